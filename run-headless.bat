@@ -0,0 +1,19 @@
+rem AppCDS needs the classes in a jar, rebuild it (and drop the archive) only when the sources change
+set rebuild=1
+if exist build\chip8.jar (
+	powershell -NoProfile -Command "if (Get-ChildItem -Recurse src | Where-Object { $_.LastWriteTime -gt (Get-Item build\chip8.jar).LastWriteTime }) { exit 1 }"
+	if not errorlevel 1 set rebuild=0
+)
+if %rebuild%==1 (
+	javac -d bin -sourcepath src src\chip8\*.java src\chip8\games\*.java
+	copy /y src\chip8\games\*.ch8 bin\chip8\games\ >nul
+	if not exist build mkdir build
+	jar cf build\chip8.jar -C bin .
+	if exist build\headless.jsa del build\headless.jsa
+)
+rem First run dumps the loaded classes into an AppCDS archive, later runs map it in
+if exist build\headless.jsa (
+	java -XX:SharedArchiveFile=build\headless.jsa -Djava.awt.headless=true -cp build\chip8.jar chip8.Chip8Headless %*
+) else (
+	java -XX:ArchiveClassesAtExit=build\headless.jsa -Djava.awt.headless=true -cp build\chip8.jar chip8.Chip8Headless %*
+)
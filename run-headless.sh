@@ -0,0 +1,14 @@
+# AppCDS needs the classes in a jar, rebuild it (and drop the archive) only when the sources change
+if [ ! -f build/chip8.jar ] || [ -n "$(find src -newer build/chip8.jar)" ]; then
+	javac -d bin -sourcepath src src/chip8/*.java src/chip8/games/*.java
+	cp src/chip8/games/*.ch8 bin/chip8/games/
+	mkdir -p build
+	jar cf build/chip8.jar -C bin .
+	rm -f build/headless.jsa
+fi
+# First run dumps the loaded classes into an AppCDS archive, later runs map it in
+if [ -f build/headless.jsa ]; then
+	java -XX:SharedArchiveFile=build/headless.jsa -Djava.awt.headless=true -cp build/chip8.jar chip8.Chip8Headless "$@"
+else
+	java -XX:ArchiveClassesAtExit=build/headless.jsa -Djava.awt.headless=true -cp build/chip8.jar chip8.Chip8Headless "$@"
+fi
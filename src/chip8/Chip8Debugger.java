@@ -0,0 +1,243 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Breakpoints, conditional breakpoints and memory watchpoints for Chip8Emu.
+ * <p>
+ * The debugger drives the emulator from the outside, the emulator itself is not
+ * instrumented. Data memory is only accessed by FX33, FX55, FX65 and DXYN so <br>
+ * watchpoints are checked by decoding the instruction at PC before it is executed.
+ * <p>
+ * As long as no breakpoints or watchpoints are set {@link #run(int)} just calls
+ * <code>executeOneInstruction()</code> in a loop. Otherwise only the addresses
+ * that have a breakpoint, and only the instructions that access memory
+ * when watchpoints are set, do any extra work.
+ * <p>
+ * <pre><code>
+ * Chip8Debugger debugger = new Chip8Debugger(emulator);
+ * debugger.addBreakpoint(0x2a4);
+ * debugger.addWriteWatchpoint(0x3f0, 0x3ff);
+ * while (debugger.run(100000) != Chip8Debugger.Stop.LIMIT)
+ *     System.out.println(debugger.getStop() + " at " + Integer.toHexString(debugger.getStopPC()));
+ * </code></pre>
+ */
+public class Chip8Debugger {
+	public interface Condition {
+		boolean test(Chip8Emu emu);
+	}
+
+	public enum Stop {
+		STEP, BREAKPOINT, READ_WATCHPOINT, WRITE_WATCHPOINT, FRAME, LIMIT
+	}
+
+	private final Chip8Emu emulator;
+	private final BitSet breakpoints = new BitSet(4096);
+	private final Map<Integer, Condition> conditions = new HashMap<Integer, Condition>();
+	private final BitSet readWatchpoints = new BitSet(4096);
+	private final BitSet writeWatchpoints = new BitSet(4096);
+
+	private int instructionsPerFrame = Chip8Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+	private long instructionCount;
+	private Stop stop = Stop.STEP;
+	private int stopPC;
+	private int stopAddress = -1;
+
+	public Chip8Debugger(Chip8Emu emulator) {
+		this.emulator = emulator;
+	}
+
+	public void addBreakpoint(int pc) {
+		breakpoints.set(pc & 0xfff);
+		conditions.remove(pc & 0xfff);
+	}
+
+	/**
+	 * Break at <code>pc</code> only if <code>condition</code> holds when the instruction is about to execute.
+	 */
+	public void addBreakpoint(int pc, Condition condition) {
+		breakpoints.set(pc & 0xfff);
+		conditions.put(pc & 0xfff, condition);
+	}
+
+	/**
+	 * Break at <code>pc</code> only if register <code>r</code> equals <code>value</code>.
+	 */
+	public void addRegisterBreakpoint(int pc, int r, int value) {
+		addBreakpoint(pc, (emu) -> emu.getRegister(r) == value);
+	}
+
+	public void removeBreakpoint(int pc) {
+		breakpoints.clear(pc & 0xfff);
+		conditions.remove(pc & 0xfff);
+	}
+
+	public void addReadWatchpoint(int from, int to) {
+		readWatchpoints.set(from & 0xfff, (to & 0xfff) + 1);
+	}
+
+	public void addWriteWatchpoint(int from, int to) {
+		writeWatchpoints.set(from & 0xfff, (to & 0xfff) + 1);
+	}
+
+	public void removeWatchpoints(int from, int to) {
+		readWatchpoints.clear(from & 0xfff, (to & 0xfff) + 1);
+		writeWatchpoints.clear(from & 0xfff, (to & 0xfff) + 1);
+	}
+
+	public void clearAll() {
+		breakpoints.clear();
+		conditions.clear();
+		readWatchpoints.clear();
+		writeWatchpoints.clear();
+	}
+
+	public void setInstructionsPerFrame(int n) {
+		instructionsPerFrame = n;
+	}
+
+	public long getInstructionCount() {
+		return instructionCount;
+	}
+
+	public Stop getStop() {
+		return stop;
+	}
+
+	/**
+	 * @return the PC of the instruction that caused the last stop, the instruction has not been executed
+	 */
+	public int getStopPC() {
+		return stopPC;
+	}
+
+	/**
+	 * @return the memory address that triggered the last watchpoint stop, or -1
+	 */
+	public int getStopAddress() {
+		return stopAddress;
+	}
+
+	/**
+	 * Execute exactly one instruction, ignoring breakpoints and watchpoints.
+	 */
+	public Stop step() {
+		emulator.executeOneInstruction();
+		instructionCount++;
+		return stopped(Stop.STEP, emulator.getProgramCounter(), -1);
+	}
+
+	/**
+	 * Run until the end of the current frame, a breakpoint or a watchpoint.
+	 */
+	public Stop runToFrame() {
+		int n = (int) (instructionsPerFrame - instructionCount % instructionsPerFrame);
+		Stop s = run(n);
+		return s == Stop.LIMIT ? stopped(Stop.FRAME, emulator.getProgramCounter(), -1) : s;
+	}
+
+	/**
+	 * Run at most <code>maxInstructions</code> or until a breakpoint or watchpoint is hit.
+	 * <p>
+	 * The breakpoint or watchpoint that caused the previous stop is not checked again
+	 * so that calling this again after a stop continues the program. A watchpoint
+	 * on the same instruction as a breakpoint still stops it after the breakpoint.
+	 * <p>
+	 * If the program fails the Chip8Emu.Error is passed on, the instructions that
+	 * completed before it are included in {@link #getInstructionCount()}.
+	 */
+	public Stop run(int maxInstructions) {
+		if (breakpoints.isEmpty() && readWatchpoints.isEmpty() && writeWatchpoints.isEmpty()) {
+			for (int i = 0; i < maxInstructions; ++i) {
+				emulator.executeOneInstruction();
+				instructionCount++;
+			}
+			return stopped(Stop.LIMIT, emulator.getProgramCounter(), -1);
+		}
+
+		boolean watching = !readWatchpoints.isEmpty() || !writeWatchpoints.isEmpty();
+		// When continuing from the instruction we stopped at, skip the check that stopped it.
+		// Breakpoints are checked before watchpoints so after a watchpoint stop both are skipped.
+		boolean resuming = emulator.getProgramCounter() == stopPC;
+		boolean skipWatchpoint = resuming && (stop == Stop.READ_WATCHPOINT || stop == Stop.WRITE_WATCHPOINT);
+		boolean skipBreakpoint = skipWatchpoint || resuming && stop == Stop.BREAKPOINT;
+		for (int i = 0; i < maxInstructions; ++i) {
+			int pc = emulator.getProgramCounter();
+			if (i > 0)
+				skipBreakpoint = skipWatchpoint = false;
+			if (!skipBreakpoint && breakpoints.get(pc)) {
+				Condition c = conditions.get(pc);
+				if (c == null || c.test(emulator))
+					return stopped(Stop.BREAKPOINT, pc, -1);
+			}
+			if (watching && !skipWatchpoint) {
+				Stop s = checkWatchpoints(pc);
+				if (s != null)
+					return s;
+			}
+			emulator.executeOneInstruction();
+			instructionCount++;
+		}
+		return stopped(Stop.LIMIT, emulator.getProgramCounter(), -1);
+	}
+
+	private Stop checkWatchpoints(int pc) {
+		if (pc > 0xffe)
+			return null; // executeOneInstruction() reports this as MEMORY_OUT_OF_RANGE
+		int opcode = emulator.getMemory(pc);
+		int argument = emulator.getMemory((pc + 1) & 0xfff);
+		int from = emulator.getIndexRegister();
+		int n;
+		BitSet watched;
+		if ((opcode & 0xf0) == 0xd0) {
+			n = argument & 0xf;
+			if (n == 0)
+				n = emulator.isHiResMode() ? 32 : 16;
+			watched = readWatchpoints;
+		} else if ((opcode & 0xf0) == 0xf0 && argument == 0x33) {
+			n = 3;
+			watched = writeWatchpoints;
+		} else if ((opcode & 0xf0) == 0xf0 && argument == 0x55) {
+			n = (opcode & 0xf) + 1;
+			watched = writeWatchpoints;
+		} else if ((opcode & 0xf0) == 0xf0 && argument == 0x65) {
+			n = (opcode & 0xf) + 1;
+			watched = readWatchpoints;
+		} else
+			return null;
+
+		int hit = watched.nextSetBit(from);
+		if (hit < 0 || hit >= from + n)
+			return null;
+		return stopped(watched == readWatchpoints ? Stop.READ_WATCHPOINT : Stop.WRITE_WATCHPOINT, pc, hit);
+	}
+
+	private Stop stopped(Stop s, int pc, int address) {
+		stop = s;
+		stopPC = pc;
+		stopAddress = address;
+		return s;
+	}
+}
@@ -0,0 +1,98 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+/**
+ * Times the display instructions in high res mode and compares them with copying the whole display.
+ * <p>
+ * Each instruction is run from a ROM that repeats it over and over, so the time <br>
+ * includes fetch and decode. <code>mov</code> shows that overhead alone.
+ * <p>
+ * <pre><code>
+ * java -cp bin chip8.Chip8DisplayBench
+ * </code></pre>
+ */
+public class Chip8DisplayBench {
+	private static final int REPEAT = 1000;
+	private static final int ROUNDS = 2000;
+
+	private static final Chip8Emu.Chip8IO NO_IO = new Chip8Emu.Chip8IO() {
+		@Override
+		public boolean testKey(int key) {
+			return false;
+		}
+
+		@Override
+		public void playBeep() {
+		}
+	};
+
+	private static void time(String name, int word) {
+		// 0x200: high; mvi 000; then the instruction REPEAT times; jmp 204
+		byte[] rom = new byte[4 + REPEAT * 2 + 2];
+		rom[0] = 0x00;
+		rom[1] = (byte) 0xff;
+		rom[2] = (byte) 0xa0;
+		rom[3] = 0x00;
+		for (int i = 0; i < REPEAT; i++) {
+			rom[4 + 2 * i] = (byte) (word >> 8);
+			rom[5 + 2 * i] = (byte) word;
+		}
+		rom[4 + REPEAT * 2] = 0x12;
+		rom[5 + REPEAT * 2] = 0x04;
+
+		Chip8Emu emulator = new Chip8Emu(NO_IO);
+		emulator.loadGame(new ByteArrayInputStream(rom));
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long t0 = System.nanoTime();
+			for (int i = REPEAT + 1; i > 0; --i)
+				emulator.executeOneInstruction();
+			best = Math.min(best, (System.nanoTime() - t0) / (double) (REPEAT + 1));
+		}
+		System.out.println(String.format("%-22s %8.1f ns", name, best));
+	}
+
+	public static void main(String[] args) {
+		long[] display = new long[128];
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < REPEAT; i++)
+				System.arraycopy(display, 0, display, (i & 1) * 2, 128 - 2);
+			best = Math.min(best, (System.nanoTime() - t0) / (double) REPEAT);
+		}
+		System.out.println(String.format("%-22s %8.1f ns", "1 KB System.arraycopy", best));
+
+		time("6000  mov v0,00", 0x6000);
+		time("00E0  cls", 0x00e0);
+		time("00C1  scdown 1", 0x00c1);
+		time("00CF  scdown 15", 0x00cf);
+		time("00FB  scright", 0x00fb);
+		time("00FC  scleft", 0x00fc);
+		time("D01F  sprite 8 x 15", 0xd01f);
+		time("D010  sprite 16 x 16", 0xd010);
+	}
+
+}
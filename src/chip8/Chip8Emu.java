@@ -21,15 +21,18 @@ package chip8;
  */
 
 import java.io.*;
-import java.util.*;
-
-import chip8.games.Games;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 /*
  Code  Assembler  Description  Notes
- 00Cx  scdown x  Scroll the screen down x lines  Super only, not implemented
+ 00Cx  scdown x  Scroll the screen down x lines  Super only
  00E0  cls  Clear the screen
  00EE  rts  return from subroutine call
+ 00FB  scright  Scroll the screen right 4 pixels  Super only
+ 00FC  scleft  Scroll the screen left 4 pixels  Super only
+ 00FD  exit  Stop the interpreter  Super only
  00FE  low  disable extended screen mode  Super only
  00FF  high  enable extended screen mode (128 x 64)  Super only
  1xxx  jmp xxx  jump to address xxx
@@ -53,6 +56,7 @@ import chip8.games.Games;
  bxxx  jmi xxx  Jump to address xxx+register v0
  crxx  rand vr,xxx     vr = random number less than or equal to xxx
  dxys  sprite rx,ry,s  Draw sprite at screen location register x,register y height s  Sprites stored in memory at location in index register, maximum 8 bits wide. Wraps around the screen. If when drawn, clears a pixel, vf is set to 1 otherwise it is zero. All drawing is xor drawing (e.g. it toggles the screen pixels
+ dxy0  sprite rx,ry,0  Draw 16 x 16 sprite, two bytes per row  Super only, 8 x 16 in low res mode
  ek9e  skpr k  skip if key (register rk) pressed  The key is a key number, see the chip-8 documentation
  eka1  skup k  skip if key (register rk) not pressed
  fr07  gdelay vr  get delay timer into vr
@@ -89,7 +93,7 @@ public class Chip8Emu {
 	private int argument;
 	private int result;
 
-	private byte[] memory = new byte[4096];
+	private byte[][] memory;
 	private int[] registers = new int[16];
 	private int[] stack = new int[16];
 	private int programCounter = 0x200;
@@ -97,10 +101,12 @@ public class Chip8Emu {
 	private int indexRegister = 0;
 	private int delayTimer = 0;
 	private long timerSetTime = 0;
+	private boolean manualClock;
+	private long clockMillis;
 	private int foreColor = 0xffffffff;
 	private int backColor = 0xff000000;
 
-	private int fontSprites[] = { //
+	private static final int fontSprites[] = { //
 			0xf, 0x9, 0x9, 0x9, 0xf, 0x2, 0x6, 0x2, //
 			0x2, 0x7, 0xf, 0x1, 0xf, 0x8, 0xf, 0xf, //
 			0x1, 0xf, 0x1, 0xf, 0x9, 0x9, 0xf, 0x1, //
@@ -114,97 +120,422 @@ public class Chip8Emu {
 	};
 
 	private Chip8IO chip8IO;
-	private Random random = new Random();
-	private int[] pixels = new int[128 * 64];
+	private long randomSeed = scrambleSeed(System.nanoTime());
+	private long[] display;
+	private int[] pixels;
+
+	// Memory is 16 pages of 256 bytes. fork() shares the pages and the display copy-on-write,
+	// a set bit in sharedPages means that page may be shared, displayShared the same for the display.
+	private int sharedPages;
+	private boolean displayShared;
+	private ArrayDeque<Chip8Emu> forkPool;
+	private boolean forked;
+	private boolean pooled;
 
 	private boolean hiResMode;
-
+	private boolean halted;
+	private int spriteDraws;
+	private Chip8Stats stats;
+	private Chip8Trace trace;
+
+	/**
+	 * @return the display as 128 x 64 ARGB pixels, rendered on each call into an array that is reused by the next call
+	 */
 	public int[] getPixels() {
+		if (pixels == null)
+			pixels = new int[128 * 64];
+		for (int i = 0; i < 128; i++) {
+			long bits = display[i];
+			for (int j = i * 64; j < i * 64 + 64; j++, bits <<= 1)
+				pixels[j] = bits < 0 ? foreColor : backColor;
+		}
 		return pixels;
 	}
 
+	public int getProgramCounter() {
+		return programCounter;
+	}
+
+	public int getIndexRegister() {
+		return indexRegister;
+	}
+
+	public int getStackPointer() {
+		return stackPointer;
+	}
+
+	public int getRegister(int r) {
+		return registers[r];
+	}
+
+	public int getMemory(int address) {
+		return memory[address >> 8][address & 0xff] & 0xff;
+	}
+
+	public boolean isHiResMode() {
+		return hiResMode;
+	}
+
+	/**
+	 * @return true if the program has executed 00FD exit, it stays stopped until reset
+	 */
+	public boolean isHalted() {
+		return halted;
+	}
+
+	public int getDelayTimer() {
+		int value = delayTimer - ((int) (currentTimeMillis() - timerSetTime)) / 60;
+		return value < 0 ? 0 : value;
+	}
+
+	/**
+	 * @return number of DXYN instructions executed since reset
+	 */
+	public int getSpriteDraws() {
+		return spriteDraws;
+	}
+
+	/**
+	 * Start collecting frame statistics for this emulator, they are recorded by Chip8Scheduler.
+	 */
+	public Chip8Stats enableStats() {
+		if (stats == null)
+			stats = new Chip8Stats();
+		return stats;
+	}
+
+	/**
+	 * @return the statistics or null if not enabled
+	 */
+	public Chip8Stats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Start recording the last <code>capacity</code> instructions, the trace is dumped
+	 * automatically when an illegal opcode is hit.
+	 */
+	public Chip8Trace enableTrace(int capacity) {
+		trace = new Chip8Trace(capacity);
+		return trace;
+	}
+
+	/**
+	 * @return the trace or null if not enabled
+	 */
+	public Chip8Trace getTrace() {
+		return trace;
+	}
+
 	static class Error extends RuntimeException {
+		enum Kind {
+			ILLEGAL_OPCODE, STACK_OVERFLOW, STACK_UNDERFLOW, MEMORY_OUT_OF_RANGE, KEY_OUT_OF_RANGE, INVALID_STATE
+		}
+
+		private final Kind kind;
+		private final int pc;
+
 		public Error(String x) {
+			this(Kind.INVALID_STATE, -1, x);
+		}
+
+		public Error(Kind kind, int pc, String x) {
 			super(x);
+			this.kind = kind;
+			this.pc = pc;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return address of the failing instruction, or -1 if not caused by an instruction
+		 */
+		public int getPC() {
+			return pc;
 		}
 	}
 
 	public Chip8Emu(Chip8IO io) {
 		chip8IO = io;
+		memory = new byte[16][256];
+		display = new long[128];
 		reset();
 	}
 
+	private Chip8Emu() {
+	}
+
+	/**
+	 * Create a child emulator that continues independently from the current state of this one.
+	 * <p>
+	 * Registers, stack, timers and the random generator state are copied, the memory <br>
+	 * and the display are shared until either the parent or the child writes to them.
+	 * Memory is copied one 256 byte page at a time and only CHIP8 FX33 and FX55 write it,
+	 * the display is 1 KB at one bit per pixel.
+	 * <p>
+	 * Children that are no longer needed should be given back with {@link #release()},
+	 * later forks from the same family reuse them. A family of forked emulators is
+	 * not thread safe, use it from one thread only.
+	 */
+	public Chip8Emu fork() {
+		if (forkPool == null)
+			forkPool = new ArrayDeque<Chip8Emu>();
+		Chip8Emu child = forkPool.poll();
+		if (child == null)
+			child = new Chip8Emu();
+		child.forkPool = forkPool;
+		child.forked = true;
+		child.pooled = false;
+		child.chip8IO = chip8IO;
+		if (child.memory == null)
+			child.memory = new byte[16][];
+		System.arraycopy(memory, 0, child.memory, 0, 16);
+		child.display = display;
+		sharedPages = child.sharedPages = 0xffff;
+		displayShared = child.displayShared = true;
+		System.arraycopy(registers, 0, child.registers, 0, 16);
+		System.arraycopy(stack, 0, child.stack, 0, 16);
+		child.programCounter = programCounter;
+		child.stackPointer = stackPointer;
+		child.indexRegister = indexRegister;
+		child.delayTimer = delayTimer;
+		child.timerSetTime = timerSetTime;
+		child.manualClock = manualClock;
+		child.clockMillis = clockMillis;
+		child.foreColor = foreColor;
+		child.backColor = backColor;
+		child.hiResMode = hiResMode;
+		child.halted = halted;
+		child.randomSeed = randomSeed;
+		child.spriteDraws = spriteDraws;
+		child.stats = null;
+		child.trace = null;
+		return child;
+	}
+
+	public Chip8Emu fork(Chip8IO io) {
+		Chip8Emu child = fork();
+		child.chip8IO = io;
+		return child;
+	}
+
+	/**
+	 * Give a forked emulator back to the pool of its family, it must not be used after this.
+	 * <p>
+	 * Releasing the same child again does nothing, only emulators created by fork() can be released.
+	 */
+	public void release() {
+		if (!forked)
+			throw new IllegalStateException("Only forked emulators can be released");
+		if (pooled)
+			return;
+		pooled = true;
+		Arrays.fill(memory, null);
+		display = null;
+		chip8IO = null;
+		forkPool.push(this);
+	}
+
+	private void writeMemory(int address, int value) {
+		int page = address >> 8;
+		if ((sharedPages >> page & 1) != 0) {
+			memory[page] = memory[page].clone();
+			sharedPages &= ~(1 << page);
+		}
+		memory[page][address & 0xff] = (byte) value;
+	}
+
+	private void ownDisplay() {
+		display = display.clone();
+		displayShared = false;
+	}
+
+	// Same generator as java.util.Random.nextInt() but with the state in a field so that it can be saved and copied
+
+	private static long scrambleSeed(long seed) {
+		return (seed ^ 0x5DEECE66DL) & ((1L << 48) - 1);
+	}
+
+	private int nextRandom() {
+		randomSeed = (randomSeed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+		return (int) (randomSeed >>> 16);
+	}
+
+	public void setSeed(long seed) {
+		randomSeed = scrambleSeed(seed);
+	}
+
+	/**
+	 * Run the delay timer from a clock advanced by {@link #advanceClock(long)} instead
+	 * of the system clock, for reproducible runs.
+	 */
+	public void setManualClock(long millis) {
+		manualClock = true;
+		clockMillis = millis;
+	}
+
+	public void advanceClock(long millis) {
+		clockMillis += millis;
+	}
+
+	/**
+	 * @return the clock the delay timer runs from, manual or system, in milliseconds
+	 */
+	long currentTimeMillis() {
+		return manualClock ? clockMillis : System.currentTimeMillis();
+	}
+
+	void setChip8IO(Chip8IO io) {
+		chip8IO = io;
+	}
+
+	// Chip8SessionStore moves these to whichever emulator object a session is woken into
+	void setDiagnostics(Chip8Stats stats, Chip8Trace trace) {
+		this.stats = stats;
+		this.trace = trace;
+	}
+
 	private void illegalOpcode() {
-		throw new Error("Illegal opcode " + hex(opcode, 2) + hex(argument, 2) + " at " + hex(programCounter - 2, 4));
+		fail(Error.Kind.ILLEGAL_OPCODE, programCounter - 2, "Illegal opcode " + hex(opcode, 2) + hex(argument, 2));
 	}
 
-	private void clearScreen() {
-		for (int i = 0; i < 128 * 64; ++i) {
-			pixels[i] = backColor;
+	/**
+	 * Check that the <code>n</code> bytes from I on are inside the memory.
+	 */
+	private void checkIndex(int n) {
+		if (indexRegister + n > 4096)
+			fail(Error.Kind.MEMORY_OUT_OF_RANGE, programCounter - 2,
+					"Memory access " + hex(indexRegister, 4) + "+" + n + " out of range by " + hex(opcode, 2) + hex(argument, 2));
+	}
+
+	// EX9E and EXA1 take the key from a register, a ROM that puts anything above F there has a bug
+	private boolean testKey(int key) {
+		if (key > 0xf)
+			fail(Error.Kind.KEY_OUT_OF_RANGE, programCounter - 2, "Key out of range " + hex(key, 2));
+		return chip8IO.testKey(key);
+	}
+
+	private void fail(Error.Kind kind, int pc, String what) {
+		String message = what + " at " + hex(pc, 4);
+		if (trace != null) {
+			trace.recordFault(pc, opcode, argument, indexRegister, registers[opcode & 0xf]);
+			try {
+				message += ", trace in " + trace.dump();
+			} catch (IOException e) {
+				message += ", trace dump failed: " + e;
+			}
 		}
+		throw new Error(kind, pc, message);
+	}
+
+	// The display is 64 rows of 128 pixels, low res pixels are drawn as 2 x 2 blocks.
+	// Each row is two longs, the leftmost pixel is the top bit of the first one.
+
+	private static final long LEFT_PIXELS = 0xaaaaaaaaaaaaaaaaL;
+
+	private void clearScreen() {
+		if (displayShared) {
+			display = new long[128];
+			displayShared = false;
+		} else
+			Arrays.fill(display, 0);
 	}
 
 	private void scrollDown(int n) {
+		if (displayShared)
+			ownDisplay();
+		System.arraycopy(display, 0, display, n * 2, (64 - n) * 2);
+		Arrays.fill(display, 0, n * 2, 0);
+	}
 
-		int N = (64 - n) * 128;
-		int d = 64 * 128;
-		int s = d - n * 128;
-		for (int i = N; i > 0; --i) {
-			pixels[--d] = pixels[--s];
+	private void scrollRight(int n) {
+		if (displayShared)
+			ownDisplay();
+		for (int i = 0; i < 128; i += 2) {
+			display[i + 1] = display[i + 1] >>> n | display[i] << (64 - n);
+			display[i] >>>= n;
 		}
-		for (int i = n * 128; i > 0; --i) {
-			pixels[i] = backColor;
+	}
 
+	private void scrollLeft(int n) {
+		if (displayShared)
+			ownDisplay();
+		for (int i = 0; i < 128; i += 2) {
+			display[i] = display[i] << n | display[i + 1] >>> (64 - n);
+			display[i + 1] <<= n;
 		}
 	}
 
-	private void drawSprite(int x0, int y0, int h) {
+	/**
+	 * Draw a sprite <code>w</code> (8 or 16) pixels wide, 16 wide sprites have two bytes per row.
+	 * <p>
+	 * Each sprite row is turned into a 128 bit mask at its place on the screen row. High res
+	 * pixels are xored. A low res block is cleared if its top left pixel is set, otherwise all
+	 * four pixels are set, which is the same as xor unless a scroll has split the blocks.
+	 */
+	private void drawSprite(int x0, int y0, int h, int w) {
 		boolean f = false;
-		if (hiResMode) {
-			for (int iy = 0; iy < h; ++iy) {
-				int m = memory[indexRegister + iy];
-				int by = 128 * ((y0 + iy) & 0x3f);
-				for (int ix = 0; ix < 8; ix++) {
-					if ((m & 0x80) != 0) {
-						int t = ((x0 + ix) & 0x7f) + by;
-						if (pixels[t] != backColor) {
-							pixels[t] = backColor;
-							f = true;
-						} else {
-							pixels[t] = foreColor;
-						}
-					}
-					m <<= 1;
-				}
+		if (displayShared)
+			ownDisplay();
+		int x = hiResMode ? x0 & 0x7f : (x0 & 0x3f) * 2;
+		for (int iy = 0; iy < h; ++iy) {
+			long m = spriteRow(iy, w);
+			int bits = w;
+			if (!hiResMode) {
+				m = doublePixels(m);
+				bits = 2 * w;
 			}
-		} else {
-			for (int iy = 0; iy < h; ++iy) {
-				int m = memory[indexRegister + iy];
-				int by = 2 * 128 * ((y0 + iy) & 0x1f);
-				for (int ix = 0; ix < 8; ix++) {
-					if ((m & 0x80) != 0) {
-						int t = ((x0 + ix) & 0x3f) * 2 + by;
-						if (pixels[t] != backColor) {
-							pixels[t] = backColor;
-							pixels[t + 1] = backColor;
-							pixels[t + 128] = backColor;
-							pixels[t + 128 + 1] = backColor;
-							f = true;
-						} else {
-							pixels[t] = foreColor;
-							pixels[t + 1] = foreColor;
-							pixels[t + 128] = foreColor;
-							pixels[t + 128 + 1] = foreColor;
-						}
-					}
-					m <<= 1;
+			// rotate the mask right by x over the 128 bits so the sprite wraps around
+			long mh = m << (64 - bits), ml = 0;
+			int r = x;
+			if (r >= 64) {
+				ml = mh;
+				mh = 0;
+				r -= 64;
+			}
+			if (r > 0) {
+				long t = mh;
+				mh = mh >>> r | ml << (64 - r);
+				ml = ml >>> r | t << (64 - r);
+			}
+			if (hiResMode) {
+				int i = 2 * ((y0 + iy) & 0x3f);
+				f |= (display[i] & mh | display[i + 1] & ml) != 0;
+				display[i] ^= mh;
+				display[i + 1] ^= ml;
+			} else {
+				int i = 4 * ((y0 + iy) & 0x1f);
+				long sh = display[i] & mh & LEFT_PIXELS;
+				long sl = display[i + 1] & ml & LEFT_PIXELS;
+				f |= (sh | sl) != 0;
+				sh |= sh >>> 1;
+				sl |= sl >>> 1;
+				for (int k = i; k < i + 4; k += 2) {
+					display[k] = display[k] & ~mh | mh & ~sh;
+					display[k + 1] = display[k + 1] & ~ml | ml & ~sl;
 				}
 			}
-
 		}
 		registers[0xf] = f ? 1 : 0;
 	}
 
+	// Every bit of the 16 low bits becomes two bits side by side
+	private static long doublePixels(long m) {
+		m = (m | m << 8) & 0x00ff00ffL;
+		m = (m | m << 4) & 0x0f0f0f0fL;
+		m = (m | m << 2) & 0x33333333L;
+		m = (m | m << 1) & 0x55555555L;
+		return m | m << 1;
+	}
+
+	private int spriteRow(int iy, int w) {
+		if (w == 16)
+			return getMemory(indexRegister + 2 * iy) << 8 | getMemory(indexRegister + 2 * iy + 1);
+		return getMemory(indexRegister + iy);
+	}
+
 	public void unimplementedOpcode() {
 		System.out.println("Unimplemented opcode");
 	}
@@ -214,8 +545,11 @@ public class Chip8Emu {
 	}
 
 	public void executeOneInstruction() {
-		opcode = memory[programCounter++] & 0xff;
-		argument = memory[programCounter++] & 0xff;
+		int pc = programCounter;
+		if (pc > 4096 - 2)
+			fail(Error.Kind.MEMORY_OUT_OF_RANGE, pc, "Instruction fetch out of range");
+		opcode = getMemory(programCounter++);
+		argument = getMemory(programCounter++);
 		//System.out.println();
 		//System.out.println(hex(programCounter - 2, 4) + "> " + hex(opcode, 2) +hex(argument, 2));
 		switch (opcode & 0xf0) {
@@ -223,10 +557,13 @@ public class Chip8Emu {
 			if (opcode != 0x00) {
 				illegalOpcode();
 			}
-			switch (argument) {
-			case 0xc1:
-				scrollDown(1);
+			if ((argument & 0xf0) == 0xc0) {
+
+				//00Cn  scdown n  Scroll the screen down n lines
+				scrollDown(argument & 0xf);
 				break;
+			}
+			switch (argument) {
 			case 0xe0:
 
 				//00E0  cls  Clear the screen
@@ -235,8 +572,26 @@ public class Chip8Emu {
 			case 0xee:
 
 				//00EE  rts  return from subroutine call
+				if (stackPointer == 0)
+					fail(Error.Kind.STACK_UNDERFLOW, pc, "Stack underflow");
 				programCounter = stack[--stackPointer];
 
+				break;
+			case 0xfb:
+
+				//00FB  scright  Scroll the screen right 4 pixels
+				scrollRight(4);
+				break;
+			case 0xfc:
+
+				//00FC  scleft  Scroll the screen left 4 pixels
+				scrollLeft(4);
+				break;
+			case 0xfd:
+
+				//00FD  exit  Stop the interpreter, the PC stays on this instruction
+				halted = true;
+				programCounter = pc;
 				break;
 			case 0xfe:
 				hiResMode = false;
@@ -258,6 +613,8 @@ public class Chip8Emu {
 		case 0x20:
 
 			//2xxx  jsr xxx  jump to subroutine at address xxx  16 levels maximum
+			if (stackPointer == stack.length)
+				fail(Error.Kind.STACK_OVERFLOW, pc, "Stack overflow");
 			stack[stackPointer++] = programCounter;
 			programCounter = ((opcode & 0xf) << 8) + argument;
 
@@ -383,7 +740,7 @@ public class Chip8Emu {
 		case 0xc0:
 
 			//crxx  rand vr,xxx     vr = random number less than or equal to xxx
-			registers[opcode & 0xf] = random.nextInt() & argument;
+			registers[opcode & 0xf] = nextRandom() & argument;
 			break;
 		case 0xd0: {
 
@@ -391,7 +748,16 @@ public class Chip8Emu {
 			int x = registers[opcode & 0xf];
 			int y = registers[argument >> 4];
 			int h = argument & 0xf;
-			drawSprite(x, y, h);
+			if (h == 0) {
+				//dxy0  sprite rx,ry,0  16 x 16 sprite in high res mode, 8 x 16 in low res mode
+				int w = hiResMode ? 16 : 8;
+				checkIndex(w * 2);
+				drawSprite(x, y, 16, w);
+			} else {
+				checkIndex(h);
+				drawSprite(x, y, h, 8);
+			}
+			spriteDraws++;
 
 			break;
 		}
@@ -400,7 +766,7 @@ public class Chip8Emu {
 			case 0x9e: {
 				//ek9e  skpr k  skip if key (register rk) pressed  The key is a key number, see the chip-8 documentation
 				//System.out.println("KEY=" + registers[0xf & opcode]);
-				if (chip8IO.testKey(registers[0xf & opcode])) {
+				if (testKey(registers[0xf & opcode])) {
 					programCounter += 2;
 				}
 				break;
@@ -408,7 +774,7 @@ public class Chip8Emu {
 			case 0xa1: {
 				//eka1  skup k  skip if key (register rk) not pressed
 				//System.out.println("KEY=" + registers[0xf & opcode]);
-				if (!chip8IO.testKey(registers[0xf & opcode])) {
+				if (!testKey(registers[0xf & opcode])) {
 					programCounter += 2;
 				}
 				break;
@@ -423,11 +789,7 @@ public class Chip8Emu {
 			case 0x07: {
 
 				//fr07  gdelay vr  get delay timer into vr
-				int value = delayTimer - ((int) (System.currentTimeMillis() - timerSetTime)) / 60;
-				if (value < 0) {
-					value = 0;
-				}
-				registers[opcode & 0xf] = value;
+				registers[opcode & 0xf] = getDelayTimer();
 				break;
 			}
 			case 0x0a: {
@@ -445,7 +807,7 @@ public class Chip8Emu {
 
 				//fr15  sdelay vr  set the delay timer to vr
 				delayTimer = registers[opcode & 0xf];
-				timerSetTime = System.currentTimeMillis();
+				timerSetTime = currentTimeMillis();
 				break;
 			case 0x18:
 
@@ -467,17 +829,19 @@ public class Chip8Emu {
 
 				//fr33  bcd vr  store the bcd representation of register vr at location I,I+1,I+2  Doesn't change I
 				int val = registers[opcode & 0xf];
-				memory[indexRegister + 0] = (byte) (val / 100);
-				memory[indexRegister + 1] = (byte) (val % 100 / 10);
-				memory[indexRegister + 2] = (byte) (val % 10);
+				checkIndex(3);
+				writeMemory(indexRegister + 0, val / 100);
+				writeMemory(indexRegister + 1, val % 100 / 10);
+				writeMemory(indexRegister + 2, val % 10);
 
 				break;
 			case 0x55: {
 
 				//fr55  str v0-vr  store registers v0-vr at location I onwards  I is incremented to point to the next location on. e.g. I = I + r + 1
 				int r = opcode & 0xf;
+				checkIndex(r + 1);
 				for (int i = 0; i <= r; ++i) {
-					memory[indexRegister++] = (byte) registers[i];
+					writeMemory(indexRegister++, registers[i]);
 				}
 				break;
 
@@ -486,8 +850,9 @@ public class Chip8Emu {
 
 				//fx65  ldr v0-vr  load registers v0-vr from location I onwards  as above.
 				int r = opcode & 0xf;
+				checkIndex(r + 1);
 				for (int i = 0; i <= r; ++i) {
-					registers[i] = memory[indexRegister++] & 0xff;
+					registers[i] = getMemory(indexRegister++);
 				}
 				break;
 			}
@@ -497,12 +862,8 @@ public class Chip8Emu {
 		default:
 			illegalOpcode();
 		}
-	}
-
-	private int toInt(byte b1, byte b2) {
-		int i1 = b1 >= 0 ? b1 : 256 + b1;
-		int i2 = b2 >= 0 ? b2 : 256 + b2;
-		return i1 * 256 + i2;
+		if (trace != null)
+			trace.record(pc, opcode, argument, indexRegister, registers[opcode & 0xf]);
 	}
 
 	private String hex(int x, int n) {
@@ -517,12 +878,12 @@ public class Chip8Emu {
 		try {
 			int t, i = 0x200;
 			while ((t = is.read()) >= 0) {
-				memory[i++] = (byte) t;
+				writeMemory(i++, t);
 			}
 
 			int n = i;
 			for (i = 0; i < fontSprites.length; ++i) {
-				memory[i] = (byte) (fontSprites[i] << 4);
+				writeMemory(i, fontSprites[i] << 4);
 			}
 			if (false) {
 				for (int j = 0x200; j < n; j += 2) {
@@ -531,7 +892,7 @@ public class Chip8Emu {
 						System.out.println();
 						System.out.print(hex(j, 4) + ": ");
 					}
-					System.out.print(hex(toInt(memory[j], memory[j + 1]), 4) + " ");
+					System.out.print(hex(getMemory(j) << 8 | getMemory(j + 1), 4) + " ");
 
 				}
 				System.out.println();
@@ -548,7 +909,77 @@ public class Chip8Emu {
 		}
 		programCounter = 0x200;
 		indexRegister = 0;
+		halted = false;
 		clearScreen();
 	}
 
+	public static final int STATE_SIZE = 4 * 8 + 2 * 8 + 16 + 2 * 16 + 4096 + 128 * 64 / 8;
+	private static final int STATE_MAGIC = 0x43384532; // "C8E2"
+
+	/**
+	 * Write the complete emulator state, {@link #STATE_SIZE} bytes, at the buffer position.
+	 * <p>
+	 * The display is stored as one bit per pixel and the delay timer as its remaining
+	 * value so it does not run while the state is stored. A manual clock is stored
+	 * with its current time. Stats and the trace are not part of the state, they stay
+	 * with this object.
+	 */
+	public synchronized void saveState(ByteBuffer b) {
+		b.putInt(STATE_MAGIC);
+		b.putInt(programCounter);
+		b.putInt(stackPointer);
+		b.putInt(indexRegister);
+		b.putInt(getDelayTimer());
+		b.putInt(foreColor);
+		b.putInt(backColor);
+		b.putInt((hiResMode ? 1 : 0) | (halted ? 2 : 0) | (manualClock ? 4 : 0));
+		b.putLong(randomSeed);
+		b.putLong(clockMillis);
+		for (int i = 0; i < 16; i++)
+			b.put((byte) registers[i]);
+		for (int i = 0; i < 16; i++)
+			b.putShort((short) stack[i]);
+		for (int i = 0; i < 16; i++)
+			b.put(memory[i]);
+		for (int i = 0; i < 128; i++)
+			b.putLong(display[i]);
+	}
+
+	/**
+	 * Restore the state written by {@link #saveState(ByteBuffer)}, the stats and trace of this object are kept.
+	 */
+	public synchronized void restoreState(ByteBuffer b) {
+		if (b.getInt() != STATE_MAGIC)
+			throw new Error("Not a saved emulator state");
+		programCounter = b.getInt();
+		stackPointer = b.getInt();
+		indexRegister = b.getInt();
+		delayTimer = b.getInt();
+		foreColor = b.getInt();
+		backColor = b.getInt();
+		int flags = b.getInt();
+		hiResMode = (flags & 1) != 0;
+		halted = (flags & 2) != 0;
+		manualClock = (flags & 4) != 0;
+		randomSeed = b.getLong();
+		clockMillis = b.getLong();
+		timerSetTime = currentTimeMillis();
+		for (int i = 0; i < 16; i++)
+			registers[i] = b.get() & 0xff;
+		for (int i = 0; i < 16; i++)
+			stack[i] = b.getShort() & 0xffff;
+		for (int i = 0; i < 16; i++) {
+			if ((sharedPages >> i & 1) != 0)
+				memory[i] = new byte[256];
+			b.get(memory[i]);
+		}
+		sharedPages = 0;
+		if (displayShared) {
+			display = new long[128];
+			displayShared = false;
+		}
+		for (int i = 0; i < 128; i++)
+			display[i] = b.getLong();
+	}
+
 }
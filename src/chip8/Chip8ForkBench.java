@@ -0,0 +1,93 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.nio.ByteBuffer;
+
+import chip8.games.Games;
+
+/**
+ * Times short rollouts from a running game, forked children against save and restore.
+ * <p>
+ * A game is run for a while, then each rollout runs a few frames from that point <br>
+ * and is thrown away, either as a forked child that is released afterwards or by
+ * restoring a saved state. The forked rollouts draw and write memory like the game
+ * does, so they include the copy-on-write copies of the pages they touch.
+ * <p>
+ * <pre><code>
+ * java -cp bin chip8.Chip8ForkBench [game] [frames per rollout]
+ * </code></pre>
+ */
+public class Chip8ForkBench {
+	private static final int WARMUP_FRAMES = 600;
+	private static final int ROLLOUTS = 20000;
+	private static final int ROUNDS = 10;
+
+	private static final Chip8Emu.Chip8IO NO_IO = new Chip8Emu.Chip8IO() {
+		@Override
+		public boolean testKey(int key) {
+			return false;
+		}
+
+		@Override
+		public void playBeep() {
+		}
+	};
+
+	public static void main(String[] args) {
+		String name = args.length > 0 ? args[0] : "Blinky";
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int instructions = frames * Chip8Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+
+		Chip8Emu emulator = new Chip8Emu(NO_IO);
+		emulator.setManualClock(0);
+		emulator.loadGame(Games.getGames().get(name).getAsStream());
+		new Chip8Scheduler(emulator).runFrames(WARMUP_FRAMES);
+		ByteBuffer state = ByteBuffer.allocate(Chip8Emu.STATE_SIZE);
+
+		double bestFork = Double.MAX_VALUE, bestRestore = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long t0 = System.nanoTime();
+			for (int r = 0; r < ROLLOUTS; r++) {
+				Chip8Emu child = emulator.fork();
+				for (int i = instructions; i > 0; --i)
+					child.executeOneInstruction();
+				child.release();
+			}
+			long t1 = System.nanoTime();
+			for (int r = 0; r < ROLLOUTS; r++) {
+				state.clear();
+				emulator.saveState(state);
+				for (int i = instructions; i > 0; --i)
+					emulator.executeOneInstruction();
+				state.flip();
+				emulator.restoreState(state);
+			}
+			long t2 = System.nanoTime();
+			bestFork = Math.min(bestFork, (t1 - t0) / (double) ROLLOUTS);
+			bestRestore = Math.min(bestRestore, (t2 - t1) / (double) ROLLOUTS);
+		}
+		System.out.println(String.format("%s, %d instruction rollouts after %d frames", name, instructions, WARMUP_FRAMES));
+		System.out.println(String.format("%-22s %8.0f ns", "fork and release", bestFork));
+		System.out.println(String.format("%-22s %8.0f ns", "save and restore", bestRestore));
+	}
+
+}
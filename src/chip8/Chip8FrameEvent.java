@@ -0,0 +1,58 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one emulated frame, the event duration is the time spent interpreting it.
+ * <p>
+ * Chip8Scheduler only creates these when run with <code>-Dchip8.jfr=true</code>, e.g. <br>
+ * <pre><code>
+ * java -Dchip8.jfr=true -XX:StartFlightRecording:filename=chip8.jfr -cp bin chip8.ChipEmuMain
+ * jfr print --events chip8.Frame chip8.jfr
+ * </code></pre>
+ */
+@Name("chip8.Frame")
+@Label("CHIP8 Frame")
+@Category("CHIP8")
+@Description("One emulated 60 Hz frame")
+@StackTrace(false)
+class Chip8FrameEvent extends Event {
+	@Label("Instructions")
+	int instructions;
+
+	@Label("Timer Ticks")
+	@Description("60 Hz ticks of the emulator clock that elapsed during the frame")
+	int timerTicks;
+
+	@Label("Frames Dropped")
+	@Description("Frames skipped before this one because the emulator fell behind")
+	int framesDropped;
+
+	@Label("Sprite Draws")
+	int spriteDraws;
+}
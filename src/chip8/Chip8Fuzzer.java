@@ -0,0 +1,337 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import chip8.games.Games;
+
+/**
+ * Coverage guided fuzzer for ROMs and the emulator.
+ * <p>
+ * Runs ROMs under generated key input and random generator seeds on all cores <br>
+ * of a fork-join pool. The PCs and opcode words executed are tracked in bitmaps,
+ * and inputs that reach new coverage are kept in the corpus and mutated further.
+ * With <code>-mutate</code> the ROM bytes are mutated too.
+ * <p>
+ * Every distinct Chip8Emu.Error (ROM, kind and PC) is reported once, and the ROM is saved
+ * to the output directory so that the failure can be reproduced with
+ * <code>-repro</code> and the printed seeds. Runs are deterministic because the
+ * emulator runs on a manual clock advanced one frame at a time.
+ * <p>
+ * <pre><code>
+ * java -cp bin chip8.Chip8Fuzzer [-seconds 60] [-frames 300] [-mutate] [-out dir] [game|all|file.ch8]...
+ * java -cp bin chip8.Chip8Fuzzer -repro file.ch8 inputSeed randomSeed [-frames 300]
+ * </code></pre>
+ */
+public class Chip8Fuzzer {
+	private static final int MS_PER_FRAME = 1000 / Chip8Scheduler.FRAMES_PER_SECOND;
+
+	/** One fuzzer input: a ROM and the seeds for the key input and the emulator random generator. */
+	static class Input {
+		final String name;
+		final byte[] rom;
+		final long inputSeed;
+		final long randomSeed;
+
+		Input(String name, byte[] rom, long inputSeed, long randomSeed) {
+			this.name = name;
+			this.rom = rom;
+			this.inputSeed = inputSeed;
+			this.randomSeed = randomSeed;
+		}
+	}
+
+	/** Deterministic key input, every frame there is a 1 in 8 chance that the pressed keys change. */
+	static class FuzzIO implements Chip8Emu.Chip8IO {
+		private long state;
+		private int keys;
+
+		FuzzIO(long seed) {
+			state = seed == 0 ? 1 : seed;
+		}
+
+		private int next() {
+			state ^= state << 13;
+			state ^= state >>> 7;
+			state ^= state << 17;
+			return (int) state;
+		}
+
+		void frame() {
+			int r = next();
+			if ((r & 7) == 0)
+				keys = (r >>> 3 & 3) == 0 ? 0 : 1 << (r >>> 5 & 0xf);
+		}
+
+		@Override
+		public boolean testKey(int key) {
+			return key >= 0 && key <= 0xf && (keys & (1 << key)) != 0;
+		}
+
+		@Override
+		public void playBeep() {
+		}
+	}
+
+	private final int frames;
+	private final boolean mutate;
+	private final File outDir;
+	private final List<Input> corpus = new ArrayList<Input>();
+	private final AtomicLongArray pcCoverage = new AtomicLongArray(4096 / 64);
+	private final AtomicLongArray opcodeCoverage = new AtomicLongArray(65536 / 64);
+	private final Map<String, Input> crashes = new TreeMap<String, Input>();
+	private final AtomicLong executions = new AtomicLong();
+
+	public Chip8Fuzzer(List<Input> seeds, int frames, boolean mutate, File outDir) {
+		corpus.addAll(seeds);
+		this.frames = frames;
+		this.mutate = mutate;
+		this.outDir = outDir;
+	}
+
+	private class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Random random;
+		private final long deadline;
+		private final long[] pcs = new long[4096 / 64];
+		private final long[] opcodes = new long[65536 / 64];
+
+		Worker(long seed, long deadline) {
+			random = new Random(seed);
+			this.deadline = deadline;
+		}
+
+		@Override
+		protected void compute() {
+			while (System.nanoTime() < deadline) {
+				Input input = mutate(pick());
+				Arrays.fill(pcs, 0);
+				Arrays.fill(opcodes, 0);
+				try {
+					run(input, frames, pcs, opcodes);
+				} catch (Chip8Emu.Error e) {
+					crashed(input.name + " " + e.getKind() + " at " + String.format("%03x", e.getPC()), e.getMessage(), input);
+				} catch (RuntimeException e) {
+					crashed(input.name + " " + e.getClass().getSimpleName(), e.toString(), input);
+				}
+				executions.incrementAndGet();
+				if (merge(pcCoverage, pcs) | merge(opcodeCoverage, opcodes)) {
+					synchronized (corpus) {
+						corpus.add(input);
+					}
+				}
+			}
+		}
+
+		private Input pick() {
+			synchronized (corpus) {
+				return corpus.get(random.nextInt(corpus.size()));
+			}
+		}
+
+		private Input mutate(Input in) {
+			byte[] rom = in.rom;
+			if (mutate && random.nextBoolean() && rom.length > 0) {
+				rom = rom.clone();
+				for (int n = 1 + random.nextInt(4); n > 0; n--) {
+					int i = random.nextInt(rom.length);
+					if (random.nextBoolean())
+						rom[i] ^= 1 << random.nextInt(8);
+					else
+						rom[i] = (byte) random.nextInt(256);
+				}
+			}
+			long inputSeed = random.nextInt(4) == 0 ? in.inputSeed : random.nextLong();
+			long randomSeed = random.nextInt(4) == 0 ? in.randomSeed : random.nextLong();
+			return new Input(in.name, rom, inputSeed, randomSeed);
+		}
+	}
+
+	/**
+	 * Run one input, recording the PCs and opcode words executed into the bitmaps (which may be null).
+	 */
+	static Chip8Emu run(Input input, int frames, long[] pcs, long[] opcodes) {
+		FuzzIO io = new FuzzIO(input.inputSeed);
+		Chip8Emu emulator = new Chip8Emu(io);
+		emulator.setSeed(input.randomSeed);
+		emulator.setManualClock(0);
+		emulator.loadGame(new ByteArrayInputStream(input.rom, 0, Math.min(input.rom.length, 4096 - 0x200)));
+		for (int f = 0; f < frames; f++) {
+			io.frame();
+			for (int i = Chip8Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME; i > 0; --i) {
+				if (pcs != null) {
+					int pc = emulator.getProgramCounter();
+					if (pc < 4095) {
+						int word = emulator.getMemory(pc) << 8 | emulator.getMemory(pc + 1);
+						pcs[pc >> 6] |= 1L << pc;
+						opcodes[word >> 6] |= 1L << word;
+					}
+				}
+				emulator.executeOneInstruction();
+			}
+			emulator.advanceClock(MS_PER_FRAME);
+		}
+		return emulator;
+	}
+
+	private static boolean merge(AtomicLongArray global, long[] local) {
+		boolean found = false;
+		for (int i = 0; i < local.length; i++) {
+			long bits = local[i];
+			if (bits == 0)
+				continue;
+			long old;
+			while (((old = global.get(i)) | bits) != old) {
+				if (global.compareAndSet(i, old, old | bits)) {
+					found = true;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+
+	private void crashed(String key, String message, Input input) {
+		synchronized (crashes) {
+			if (crashes.containsKey(key))
+				return;
+			crashes.put(key, input);
+		}
+		String file = "crash-" + key.replaceAll("[^A-Za-z0-9._-]", "-") + ".ch8";
+		try (OutputStream os = new FileOutputStream(new File(outDir, file))) {
+			os.write(input.rom);
+		} catch (IOException e) {
+			file = "(not saved: " + e + ")";
+		}
+		System.out.println(input.name + ": " + message);
+		System.out.println("    reproduce with -repro " + new File(outDir, file) + " " + input.inputSeed + " "
+				+ input.randomSeed + " -frames " + frames);
+	}
+
+	public void fuzz(int seconds, int threads) {
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(i * 0x9E3779B97F4A7C15L + System.nanoTime(), deadline);
+		long t0 = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(workers);
+			}
+		});
+		pool.shutdown();
+		double elapsed = (System.nanoTime() - t0) / 1e9;
+
+		long n = executions.get();
+		System.out.println(String.format("%d executions in %.1f s, %.0f exec/s, %.0f exec/s per core", n, elapsed,
+				n / elapsed, n / elapsed / threads));
+		System.out.println("Coverage: " + bitCount(pcCoverage) + " PCs, " + bitCount(opcodeCoverage) + " opcodes, corpus "
+				+ corpus.size() + ", distinct failures " + crashes.size());
+	}
+
+	private static int bitCount(AtomicLongArray bits) {
+		int n = 0;
+		for (int i = 0; i < bits.length(); i++)
+			n += Long.bitCount(bits.get(i));
+		return n;
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = is.read(buf)) > 0)
+			bytes.write(buf, 0, n);
+		is.close();
+		return bytes.toByteArray();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int seconds = 10;
+		int frames = 300;
+		boolean mutate = false;
+		File outDir = new File(".");
+		List<Input> seeds = new ArrayList<Input>();
+		Map<String, Games.Game> games = Games.getGames();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-seconds"))
+				seconds = Integer.parseInt(args[++i]);
+			else if (arg.equals("-frames"))
+				frames = Integer.parseInt(args[++i]);
+			else if (arg.equals("-mutate"))
+				mutate = true;
+			else if (arg.equals("-out"))
+				outDir = new File(args[++i]);
+			else if (arg.equals("-repro")) {
+				byte[] rom = readAll(new FileInputStream(args[++i]));
+				Input input = new Input(args[i], rom, Long.parseLong(args[++i]), Long.parseLong(args[++i]));
+				if (i + 2 < args.length && args[i + 1].equals("-frames"))
+					frames = Integer.parseInt(args[i + 2]);
+				try {
+					run(input, frames, null, null);
+					System.out.println("No failure in " + frames + " frames");
+				} catch (Chip8Emu.Error e) {
+					System.out.println(e.getKind() + ": " + e.getMessage());
+				}
+				return;
+			} else if (arg.equals("all")) {
+				for (Games.Game game : games.values())
+					seeds.add(new Input(game.getName(), readAll(game.getAsStream()), 1, 1));
+			} else if (games.containsKey(arg))
+				seeds.add(new Input(arg, readAll(games.get(arg).getAsStream()), 1, 1));
+			else
+				seeds.add(new Input(new File(arg).getName(), readAll(new FileInputStream(arg)), 1, 1));
+		}
+		if (seeds.isEmpty()) {
+			System.out.println("usage: Chip8Fuzzer [-seconds s] [-frames n] [-mutate] [-out dir] [game|all|file.ch8]...");
+			System.out.println("       Chip8Fuzzer -repro file.ch8 inputSeed randomSeed [-frames n]");
+			return;
+		}
+		outDir.mkdirs();
+		int threads = Runtime.getRuntime().availableProcessors();
+		new Chip8Fuzzer(seeds, frames, mutate, outDir).fuzz(seconds, threads);
+	}
+
+}
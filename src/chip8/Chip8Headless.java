@@ -0,0 +1,83 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import chip8.games.Games;
+
+/**
+ * Runs games without any UI, as fast as possible, and prints a checksum of the final display.
+ * <p>
+ * Only the emulator core is used so no AWT or Swing classes get loaded. <br>
+ * See <code>run-headless.sh</code> for running this with an AppCDS archive
+ * to cut the JVM startup time for short batch jobs.
+ * <p>
+ * <pre><code>
+ * java -cp bin chip8.Chip8Headless [game|all] [frames]
+ * </code></pre>
+ * With <code>-Dchip8.stats=true</code> the frame statistics are printed for each game and
+ * with <code>-Dchip8.trace=N</code> the last N instructions are dumped if a game fails.
+ */
+public class Chip8Headless {
+
+	public static void main(String[] args) {
+		String name = args.length > 0 ? args[0] : "all";
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+
+		Chip8Emu.Chip8IO io = new Chip8Emu.Chip8IO() {
+			@Override
+			public boolean testKey(int key) {
+				return false;
+			}
+
+			@Override
+			public void playBeep() {
+			}
+		};
+
+		for (Games.Game game : Games.getGames().values()) {
+			if (!name.equals("all") && !name.equals(game.getName()))
+				continue;
+			Chip8Emu emulator = new Chip8Emu(io);
+			emulator.loadGame(game.getAsStream());
+			if (Boolean.getBoolean("chip8.stats"))
+				emulator.enableStats();
+			if (Integer.getInteger("chip8.trace", 0) > 0)
+				emulator.enableTrace(Integer.getInteger("chip8.trace"));
+			Chip8Scheduler scheduler = new Chip8Scheduler(emulator);
+			long t0 = System.nanoTime();
+			try {
+				scheduler.runFrames(frames);
+			} catch (Chip8Emu.Error e) {
+				System.out.println(game.getName() + ": " + e.getMessage());
+				continue;
+			}
+			long t1 = System.nanoTime();
+			int hash = 0;
+			for (int p : emulator.getPixels())
+				hash = 31 * hash + p;
+			System.out.println(game.getName() + ": " + scheduler.getFrameCount() + " frames in " + (t1 - t0) / 1000
+					+ " us, display " + Integer.toHexString(hash) + (emulator.isHalted() ? ", program exited" : ""));
+			if (emulator.getStats() != null)
+				emulator.getStats().print(System.out);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative long values.
+ * <p>
+ * Each power of two is split into four buckets so the bucket width is at most <br>
+ * 25% of the value. Recording does not allocate and is safe from any thread.
+ */
+public class Chip8Histogram {
+	private static final int BUCKETS = 4 * 62;
+
+	private final String name;
+	private final String unit;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public Chip8Histogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	private static int bucket(long v) {
+		if (v < 4)
+			return v < 0 ? 0 : (int) v;
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return 4 * (e - 1) + (int) ((v >>> (e - 2)) & 3);
+	}
+
+	private static long lowerBound(int bucket) {
+		if (bucket < 4)
+			return bucket;
+		return (4L + (bucket & 3)) << (bucket / 4 - 1);
+	}
+
+	public void record(long value) {
+		counts.incrementAndGet(bucket(value));
+	}
+
+	public long getCount() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+		return n;
+	}
+
+	/**
+	 * @return lower bound of the bucket that holds the given percentile (0..100), or 0 if empty
+	 */
+	public long getPercentile(double percentile) {
+		long n = getCount();
+		long limit = (long) Math.ceil(n * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen > 0 && seen >= limit)
+				return lowerBound(i);
+		}
+		return 0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+	}
+
+	public void print(PrintStream out) {
+		long n = getCount();
+		out.println(name + " (" + unit + "), " + n + " samples, p50 " + getPercentile(50) + ", p90 " + getPercentile(90)
+				+ ", p99 " + getPercentile(99));
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i);
+			if (c != 0)
+				out.println("  >= " + lowerBound(i) + ": " + c);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of the 16 CHIP8 keys as one atomic 16 bit word.
+ * <p>
+ * The UI thread calls {@link #press(int)} / {@link #release(int)}, the emulator <br>
+ * thread calls {@link #testKey(int)}, no locks are involved.
+ * <p>
+ * Every key state change is timestamped. The first time the emulator polls the keys
+ * after a change the event is considered seen. The first frame presented after that
+ * whose pixels differ from the previous frame is taken as the reaction and
+ * {@link #framePresented(boolean)} records the time from the key event to that frame
+ * in the input latency histogram. Events with no visible reaction within a second
+ * are not recorded.
+ */
+public class Chip8Keypad {
+	private static final long MAX_REACTION_NS = 1000000000L;
+
+	private final AtomicInteger state = new AtomicInteger();
+	private final AtomicLong pendingEvent = new AtomicLong();
+	private final AtomicLong seenEvent = new AtomicLong();
+	private final Chip8Histogram latency = new Chip8Histogram("Key to frame latency", "us");
+
+	public void press(int key) {
+		setPressed(key, true);
+	}
+
+	public void release(int key) {
+		setPressed(key, false);
+	}
+
+	public void setPressed(int key, boolean pressed) {
+		long now = System.nanoTime();
+		int bit = 1 << key;
+		int old, next;
+		do {
+			old = state.get();
+			next = pressed ? old | bit : old & ~bit;
+			if (next == old)
+				return; // auto repeat, not an event
+		} while (!state.compareAndSet(old, next));
+		pendingEvent.compareAndSet(0, now);
+	}
+
+	public int getState() {
+		return state.get();
+	}
+
+	public boolean testKey(int key) {
+		long t = pendingEvent.get();
+		if (t != 0 && pendingEvent.compareAndSet(t, 0))
+			seenEvent.compareAndSet(0, t);
+		if (key < 0 || key > 0xf)
+			return false; // 1 << key would wrap around
+		return (state.get() & (1 << key)) != 0;
+	}
+
+	/**
+	 * Call when a frame has been presented to the user.
+	 * 
+	 * @param changed true if the pixels differ from the previously presented frame
+	 */
+	public void framePresented(boolean changed) {
+		long t = seenEvent.get();
+		if (t == 0)
+			return;
+		long now = System.nanoTime();
+		if (changed) {
+			if (seenEvent.compareAndSet(t, 0))
+				latency.record((now - t) / 1000);
+		} else if (now - t > MAX_REACTION_NS)
+			seenEvent.compareAndSet(t, 0);
+	}
+
+	public Chip8Histogram getLatencyHistogram() {
+		return latency;
+	}
+
+}
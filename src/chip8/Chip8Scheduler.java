@@ -0,0 +1,157 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a Chip8Emu in frames of a fixed number of instructions.
+ * <p>
+ * {@link #run()} paces the frames at 60 per second, which with the default <br>
+ * of 16 instructions per frame is about the speed the original
+ * <code>sleep(1)</code> loop produced. {@link #runFrame()} runs one frame
+ * without pacing for headless and batch use.
+ * <p>
+ * This class, like the emulator and the games catalogue, does not use AWT or Swing.
+ */
+public class Chip8Scheduler implements Runnable {
+	public static final int FRAMES_PER_SECOND = 60;
+	public static final int DEFAULT_INSTRUCTIONS_PER_FRAME = 16;
+
+	static final boolean JFR = Boolean.getBoolean("chip8.jfr");
+
+	public interface FrameListener {
+		void frameDone(Chip8Emu emulator);
+	}
+
+	private final Chip8Emu emulator;
+	private int instructionsPerFrame = DEFAULT_INSTRUCTIONS_PER_FRAME;
+	private FrameListener frameListener;
+
+	private volatile boolean running;
+	private long frameCount;
+	private int framesDropped;
+
+	public Chip8Scheduler(Chip8Emu emulator) {
+		this.emulator = emulator;
+	}
+
+	public void setInstructionsPerFrame(int n) {
+		instructionsPerFrame = n;
+	}
+
+	public int getInstructionsPerFrame() {
+		return instructionsPerFrame;
+	}
+
+	public void setFrameListener(FrameListener listener) {
+		frameListener = listener;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public void runFrame() {
+		runFrame(false);
+	}
+
+	private void runFrame(boolean paced) {
+		Chip8Stats stats = emulator.getStats();
+		if (stats != null || JFR) {
+			runInstrumentedFrame(stats, paced);
+		} else {
+			for (int i = instructionsPerFrame; i > 0; --i)
+				emulator.executeOneInstruction();
+		}
+		framesDropped = 0;
+		frameCount++;
+		if (frameListener != null)
+			frameListener.frameDone(emulator);
+	}
+
+	private void runInstrumentedFrame(Chip8Stats stats, boolean paced) {
+		Chip8FrameEvent event = JFR ? new Chip8FrameEvent() : null;
+		int spriteDraws = emulator.getSpriteDraws();
+		long startMillis = emulator.currentTimeMillis();
+		long start = System.nanoTime();
+		if (event != null)
+			event.begin();
+
+		for (int i = instructionsPerFrame; i > 0; --i)
+			emulator.executeOneInstruction();
+
+		if (event != null)
+			event.end();
+		long end = System.nanoTime();
+		if (stats != null)
+			stats.recordFrame(start, end, instructionsPerFrame, framesDropped, paced);
+		if (event != null && event.shouldCommit()) {
+			event.instructions = instructionsPerFrame;
+			event.timerTicks = (int) (emulator.currentTimeMillis() * FRAMES_PER_SECOND / 1000
+					- startMillis * FRAMES_PER_SECOND / 1000);
+			event.framesDropped = framesDropped;
+			event.spriteDraws = emulator.getSpriteDraws() - spriteDraws;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Run <code>n</code> frames or until the program exits.
+	 */
+	public void runFrames(int n) {
+		for (int i = 0; i < n && !emulator.isHalted(); i++)
+			runFrame();
+	}
+
+	/**
+	 * Run frames paced at {@link #FRAMES_PER_SECOND} until {@link #stop()} is called or the program exits.
+	 * <p>
+	 * If the emulator falls more than a frame behind, the missed frames are
+	 * not caught up, the pacing restarts from the current time and the missed
+	 * frames are counted as dropped.
+	 * <p>
+	 * Frames are timed only if the emulator has stats enabled or <code>-Dchip8.jfr=true</code>
+	 * is set, see Chip8Stats and Chip8FrameEvent.
+	 */
+	@Override
+	public void run() {
+		final long period = 1000000000L / FRAMES_PER_SECOND;
+		running = true;
+		long next = System.nanoTime();
+		while (running && !emulator.isHalted()) {
+			runFrame(true);
+			next += period;
+			long wait = next - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			else if (wait < -period) {
+				framesDropped = (int) (-wait / period);
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+}
@@ -0,0 +1,237 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps many emulator sessions of which only a limited number are resident on the heap.
+ * <p>
+ * Idle sessions are hibernated, i.e. their state is saved into a fixed size slot <br>
+ * of a memory mapped slab file and the emulator is dropped. {@link #get(String)}
+ * wakes a hibernated session by restoring it, so the host should call it whenever
+ * there is input for the session. The emulator of the session hibernated last is
+ * kept as a spare and the next session to wake is restored into it, so waking a
+ * session when the store is full does not allocate. Stats and the trace of a session
+ * are kept with the session while it sleeps and moved to the emulator it wakes into.
+ * <p>
+ * When more than <code>maxResident</code> sessions are awake the least recently
+ * used one is hibernated. {@link #hibernateIdle(long)} can be called periodically
+ * to hibernate everything that has not been used for a while.
+ * <p>
+ * The emulator returned by {@link #get(String)} must not be used after the session
+ * has been hibernated, it may already be running another session. Fetch it again
+ * with {@link #get(String)}. All methods are
+ * synchronized, but running the emulator is up to the caller, so the caller also
+ * needs to make sure a session is not hibernated while its emulator is running.
+ */
+public class Chip8SessionStore implements Closeable {
+	public static final int SLOT_SIZE = 8192;
+	// The slab is mapped in regions of 1 GB because a single mapping is limited to 2 GB
+	private static final int SLOTS_PER_REGION = (1 << 30) / SLOT_SIZE;
+
+	private static class Session {
+		final String id;
+		Chip8Emu.Chip8IO io;
+		Chip8Emu emulator;
+		Chip8Stats stats;
+		Chip8Trace trace;
+		int slot = -1;
+		long lastUsed;
+
+		Session(String id, Chip8Emu.Chip8IO io) {
+			this.id = id;
+			this.io = io;
+		}
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] regions;
+	private final int maxResident;
+	private final int[] freeSlots;
+	private int freeCount;
+	private final Map<String, Session> sessions = new HashMap<String, Session>();
+	private final LinkedHashMap<String, Session> resident = new LinkedHashMap<String, Session>(16, 0.75f, true);
+	private Chip8Emu spare;
+
+	/**
+	 * @param file the slab file, created if needed, its previous content is ignored
+	 * @param maxSessions number of slots in the slab, i.e. how many sessions can be hibernated
+	 * @param maxResident how many sessions can be awake at the same time, at least 1
+	 */
+	public Chip8SessionStore(Path file, int maxSessions, int maxResident) throws IOException {
+		if (Chip8Emu.STATE_SIZE > SLOT_SIZE)
+			throw new IllegalStateException("Emulator state does not fit in a slot");
+		if (maxSessions < 1 || maxResident < 1)
+			throw new IllegalArgumentException("maxSessions and maxResident must be at least 1");
+		this.maxResident = maxResident;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		regions = new MappedByteBuffer[(maxSessions + SLOTS_PER_REGION - 1) / SLOTS_PER_REGION];
+		for (int r = 0; r < regions.length; r++) {
+			long slots = Math.min(SLOTS_PER_REGION, maxSessions - (long) r * SLOTS_PER_REGION);
+			regions[r] = channel.map(FileChannel.MapMode.READ_WRITE, (long) r * SLOTS_PER_REGION * SLOT_SIZE,
+					slots * SLOT_SIZE);
+		}
+		freeSlots = new int[maxSessions];
+		for (int i = maxSessions - 1; i >= 0; i--)
+			freeSlots[freeCount++] = i;
+	}
+
+	/**
+	 * Create a new awake session, the caller then loads a game into the returned emulator.
+	 */
+	public synchronized Chip8Emu create(String id, Chip8Emu.Chip8IO io) {
+		if (sessions.containsKey(id))
+			throw new IllegalArgumentException("Session " + id + " already exists");
+		Session s = new Session(id, io);
+		s.emulator = new Chip8Emu(io);
+		// makes room first, if that fails because the slab is full nothing has changed
+		makeResident(s);
+		sessions.put(id, s);
+		return s.emulator;
+	}
+
+	/**
+	 * @return the emulator of the session, woken up if it was hibernated, or null if there is no such session
+	 */
+	public synchronized Chip8Emu get(String id) {
+		Session s = sessions.get(id);
+		if (s == null)
+			return null;
+		if (s.emulator == null) {
+			// evict first so the evicted emulator can be reused, if the slab is full
+			// makeResident() evicts after the slot of this session has been freed
+			if (resident.size() >= maxResident && freeCount > 0)
+				evict();
+			Chip8Emu emulator = spare != null ? spare : new Chip8Emu(s.io);
+			spare = null;
+			emulator.setChip8IO(s.io);
+			emulator.restoreState(slot(s.slot));
+			emulator.setDiagnostics(s.stats, s.trace);
+			freeSlots[freeCount++] = s.slot;
+			s.slot = -1;
+			s.stats = null;
+			s.trace = null;
+			s.emulator = emulator;
+		}
+		makeResident(s);
+		return s.emulator;
+	}
+
+	public synchronized boolean isResident(String id) {
+		return resident.containsKey(id);
+	}
+
+	public synchronized void hibernate(String id) {
+		Session s = resident.get(id);
+		if (s != null) {
+			hibernate(s);
+			resident.remove(id);
+		}
+	}
+
+	/**
+	 * Hibernate all sessions that have not been accessed for <code>idleNanos</code>.
+	 */
+	public synchronized void hibernateIdle(long idleNanos) {
+		long now = System.nanoTime();
+		// resident is in access order so the idle ones are first
+		for (Iterator<Session> i = resident.values().iterator(); i.hasNext();) {
+			Session s = i.next();
+			if (now - s.lastUsed < idleNanos)
+				break;
+			hibernate(s);
+			i.remove();
+		}
+	}
+
+	public synchronized void remove(String id) {
+		Session s = sessions.remove(id);
+		if (s == null)
+			return;
+		resident.remove(id);
+		if (s.slot >= 0)
+			freeSlots[freeCount++] = s.slot;
+	}
+
+	public synchronized int getSessionCount() {
+		return sessions.size();
+	}
+
+	public synchronized int getResidentCount() {
+		return resident.size();
+	}
+
+	private void makeResident(Session s) {
+		if (!resident.containsKey(s.id)) {
+			while (resident.size() >= maxResident)
+				evict();
+		}
+		s.lastUsed = System.nanoTime();
+		resident.put(s.id, s);
+	}
+
+	private void evict() {
+		Iterator<Session> i = resident.values().iterator();
+		Session lru = i.next();
+		hibernate(lru);
+		i.remove();
+	}
+
+	private void hibernate(Session s) {
+		if (freeCount == 0)
+			throw new IllegalStateException("Session slab is full");
+		s.slot = freeSlots[--freeCount];
+		s.emulator.saveState(slot(s.slot));
+		s.stats = s.emulator.getStats();
+		s.trace = s.emulator.getTrace();
+		s.emulator.setDiagnostics(null, null);
+		spare = s.emulator;
+		s.emulator = null;
+	}
+
+	private ByteBuffer slot(int n) {
+		ByteBuffer b = regions[n / SLOTS_PER_REGION].duplicate();
+		int offset = (n % SLOTS_PER_REGION) * SLOT_SIZE;
+		b.position(offset);
+		b.limit(offset + SLOT_SIZE);
+		return b;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		sessions.clear();
+		resident.clear();
+		spare = null;
+		channel.close();
+	}
+
+}
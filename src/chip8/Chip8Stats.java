@@ -0,0 +1,91 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.PrintStream;
+
+/**
+ * Per emulator frame statistics, see {@link Chip8Emu#enableStats()}.
+ * <p>
+ * <ul>
+ * <li>frame time: time spent interpreting the frame, if this is high the interpreter is slow
+ * <li>jitter: how far the start of a frame was from where the 60 Hz pacing wanted it,
+ * if this is high but frame time is low the scheduling (or the machine) is the problem.
+ * Only frames run by {@link Chip8Scheduler#run()} are paced, so only those record jitter
+ * <li>instructions/s: interpreter throughput while running, excluding the time between frames
+ * <li>render time: time the UI spent copying and drawing the pixels, only recorded when there is a UI
+ * </ul>
+ * Nothing here allocates once constructed.
+ */
+public class Chip8Stats {
+	private final Chip8Histogram frameTime = new Chip8Histogram("Frame time", "ns");
+	private final Chip8Histogram jitter = new Chip8Histogram("Frame start jitter", "us");
+	private final Chip8Histogram throughput = new Chip8Histogram("Throughput", "instructions/s");
+	private final Chip8Histogram renderTime = new Chip8Histogram("Render time", "ns");
+	private long lastStart;
+	private long framesDropped;
+
+	void recordFrame(long start, long end, int instructions, int framesDropped, boolean paced) {
+		final long period = 1000000000L / Chip8Scheduler.FRAMES_PER_SECOND;
+		long time = end - start;
+		frameTime.record(time);
+		if (time > 0)
+			throughput.record(instructions * 1000000000L / time);
+		if (paced && lastStart != 0)
+			jitter.record(Math.abs(start - lastStart - (framesDropped + 1) * period) / 1000);
+		lastStart = paced ? start : 0;
+		this.framesDropped += framesDropped;
+	}
+
+	void recordRender(long start, long end) {
+		renderTime.record(end - start);
+	}
+
+	public Chip8Histogram getFrameTime() {
+		return frameTime;
+	}
+
+	public Chip8Histogram getJitter() {
+		return jitter;
+	}
+
+	public Chip8Histogram getThroughput() {
+		return throughput;
+	}
+
+	public Chip8Histogram getRenderTime() {
+		return renderTime;
+	}
+
+	public long getFramesDropped() {
+		return framesDropped;
+	}
+
+	public void print(PrintStream out) {
+		frameTime.print(out);
+		jitter.print(out);
+		throughput.print(out);
+		if (renderTime.getCount() > 0)
+			renderTime.print(out);
+		out.println("Frames dropped: " + framesDropped);
+	}
+
+}
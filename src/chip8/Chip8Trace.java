@@ -0,0 +1,110 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Ring buffer of the last executed instructions, see {@link Chip8Emu#enableTrace(int)}.
+ * <p>
+ * Each instruction is packed into one long: <br>
+ * <pre><code>
+ * bits 48..63  PC
+ * bits 32..47  opcode word
+ * bits 16..31  I after the instruction
+ * bit  12      set if the instruction failed and did not complete
+ * bits  8..11  register X of the instruction (the one most instructions change)
+ * bits  0..7   value of that register after the instruction, before it if it failed
+ * </code></pre>
+ * The dump format is the int "C8TR", a version int, the entry count and the
+ * entries oldest first, all big endian. Use Chip8TraceDecoder to read it.
+ */
+public class Chip8Trace {
+	static final int MAGIC = 0x43385452; // "C8TR"
+	static final int VERSION = 2; // version 1 had no fault bit
+	static final int FAULT = 1 << 12;
+
+	private final long[] ring;
+	private final int mask;
+	private long count;
+	private File dumpDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+	/**
+	 * @param capacity number of instructions to keep, rounded up to a power of two
+	 */
+	public Chip8Trace(int capacity) {
+		int n = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		ring = new long[n];
+		mask = n - 1;
+	}
+
+	void record(int pc, int opcode, int argument, int index, int register) {
+		ring[(int) count++ & mask] = (long) pc << 48 | (long) opcode << 40 | (long) argument << 32
+				| (long) index << 16 | (opcode & 0xf) << 8 | register;
+	}
+
+	void recordFault(int pc, int opcode, int argument, int index, int register) {
+		ring[(int) count++ & mask] = (long) pc << 48 | (long) opcode << 40 | (long) argument << 32
+				| (long) index << 16 | FAULT | (opcode & 0xf) << 8 | register;
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setDumpDirectory(File dir) {
+		dumpDirectory = dir;
+	}
+
+	public void dump(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		int n = (int) Math.min(count, ring.length);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(n);
+		for (long i = count - n; i < count; i++)
+			out.writeLong(ring[(int) i & mask]);
+		out.flush();
+	}
+
+	/**
+	 * Dump into a new file in the dump directory (default java.io.tmpdir).
+	 *
+	 * @return the file
+	 */
+	public File dump() throws IOException {
+		File file = File.createTempFile("chip8-trace-", ".bin", dumpDirectory);
+		try (OutputStream os = new FileOutputStream(file)) {
+			dump(os);
+		}
+		return file;
+	}
+
+}
@@ -0,0 +1,195 @@
+package chip8;
+/*
+ This file is part of JavaCHIP8.
+
+ Copyright 2004 Kustaa Nyholm / SpareTimeLabs
+ Copyright 2025 Kustaa Nyholm / SpareTimeLabs
+
+ JavaCHIP8 is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ JavaCHIP8 is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with JavaCHIP8; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Offline decoder for the dumps written by Chip8Trace.
+ * <p>
+ * Prints one line per instruction with the PC, the opcode word, the disassembly <br>
+ * (mnemonics as in the table at the top of Chip8Emu), I and the register
+ * the instruction changed, if it changed one. The instruction that failed, if the
+ * dump was written because of a failure, is marked <code>&lt;fault&gt;</code> instead.
+ * <p>
+ * <pre><code>
+ * java -cp bin chip8.Chip8TraceDecoder /tmp/chip8-trace-1234.bin
+ * </code></pre>
+ */
+public class Chip8TraceDecoder {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.out.println("usage: Chip8TraceDecoder <trace dump>");
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])))) {
+			decode(in, System.out);
+		}
+	}
+
+	public static void decode(DataInputStream in, PrintStream out) throws IOException {
+		if (in.readInt() != Chip8Trace.MAGIC)
+			throw new IOException("Not a CHIP8 trace dump");
+		int version = in.readInt();
+		if (version != 1 && version != Chip8Trace.VERSION)
+			throw new IOException("Unsupported trace version " + version);
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			long e = in.readLong();
+			int pc = (int) (e >>> 48) & 0xffff;
+			int word = (int) (e >>> 32) & 0xffff;
+			int index = (int) (e >>> 16) & 0xffff;
+			int x = (int) (e >>> 8) & 0xf;
+			int value = (int) e & 0xff;
+			String line = String.format("%03x: %04x  %-16s I=%03x", pc, word, disassemble(word), index);
+			if ((e & Chip8Trace.FAULT) != 0)
+				line += " <fault>";
+			else if (changesX(word))
+				line += String.format(" v%x=%02x", x, value);
+			out.println(line);
+		}
+	}
+
+	private static boolean changesX(int word) {
+		switch (word >> 12) {
+		case 0x6:
+		case 0x7:
+		case 0x8:
+		case 0xc:
+			return true;
+		case 0xf:
+			return (word & 0xff) == 0x07 || (word & 0xff) == 0x0a || (word & 0xff) == 0x65;
+		default:
+			return false;
+		}
+	}
+
+	public static String disassemble(int word) {
+		int x = (word >> 8) & 0xf;
+		int y = (word >> 4) & 0xf;
+		int n = word & 0xf;
+		int nn = word & 0xff;
+		int nnn = word & 0xfff;
+		switch (word >> 12) {
+		case 0x0:
+			if ((word & 0xfff0) == 0x00c0)
+				return "scdown " + n;
+			switch (word) {
+			case 0x00e0:
+				return "cls";
+			case 0x00ee:
+				return "rts";
+			case 0x00fb:
+				return "scright";
+			case 0x00fc:
+				return "scleft";
+			case 0x00fd:
+				return "exit";
+			case 0x00fe:
+				return "low";
+			case 0x00ff:
+				return "high";
+			}
+			break;
+		case 0x1:
+			return String.format("jmp %03x", nnn);
+		case 0x2:
+			return String.format("jsr %03x", nnn);
+		case 0x3:
+			return String.format("skeq v%x,%02x", x, nn);
+		case 0x4:
+			return String.format("skne v%x,%02x", x, nn);
+		case 0x5:
+			return String.format("skeq v%x,v%x", x, y);
+		case 0x6:
+			return String.format("mov v%x,%02x", x, nn);
+		case 0x7:
+			return String.format("add v%x,%02x", x, nn);
+		case 0x8:
+			switch (n) {
+			case 0x0:
+				return String.format("mov v%x,v%x", x, y);
+			case 0x1:
+				return String.format("or v%x,v%x", x, y);
+			case 0x2:
+				return String.format("and v%x,v%x", x, y);
+			case 0x3:
+				return String.format("xor v%x,v%x", x, y);
+			case 0x4:
+				return String.format("add v%x,v%x", x, y);
+			case 0x5:
+				return String.format("sub v%x,v%x", x, y);
+			case 0x6:
+				return String.format("shr v%x", x);
+			case 0x7:
+				return String.format("rsb v%x,v%x", x, y);
+			case 0xe:
+				return String.format("shl v%x", x);
+			}
+			break;
+		case 0x9:
+			return String.format("skne v%x,v%x", x, y);
+		case 0xa:
+			return String.format("mvi %03x", nnn);
+		case 0xb:
+			return String.format("jmi %03x", nnn);
+		case 0xc:
+			return String.format("rand v%x,%02x", x, nn);
+		case 0xd:
+			return String.format("sprite v%x,v%x,%x", x, y, n);
+		case 0xe:
+			if (nn == 0x9e)
+				return String.format("skpr v%x", x);
+			if (nn == 0xa1)
+				return String.format("skup v%x", x);
+			break;
+		case 0xf:
+			switch (nn) {
+			case 0x07:
+				return String.format("gdelay v%x", x);
+			case 0x0a:
+				return String.format("key v%x", x);
+			case 0x15:
+				return String.format("sdelay v%x", x);
+			case 0x18:
+				return String.format("ssound v%x", x);
+			case 0x1e:
+				return String.format("adi v%x", x);
+			case 0x29:
+				return String.format("font v%x", x);
+			case 0x33:
+				return String.format("bcd v%x", x);
+			case 0x55:
+				return String.format("str v0-v%x", x);
+			case 0x65:
+				return String.format("ldr v0-v%x", x);
+			}
+			break;
+		}
+		return "???";
+	}
+
+}
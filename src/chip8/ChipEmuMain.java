@@ -28,6 +28,8 @@ import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.Map;
 
 /**
@@ -51,14 +53,13 @@ import java.util.Map;
  */
 public class ChipEmuMain {
 	public ChipEmuMain(String...args) {
-		boolean[] keyPressed = new boolean[16];
+		Chip8Keypad keypad = new Chip8Keypad();
 
 		// Instantiate the emulator and use an anonymous class to implement the interface
 		Chip8Emu.Chip8IO chip8io = new Chip8Emu.Chip8IO() {
 			@Override
 			public boolean testKey(int key) {
-				System.out.println(key+" "+ keyPressed[key]);
-				return keyPressed[key];
+				return keypad.testKey(key);
 			}
 
 			@Override
@@ -80,27 +81,35 @@ public class ChipEmuMain {
 		
 		// Invaders uses arrow keys, star/shoot with the cursor up key, left/right to move the gun
 		// See getKeyMapping for how QWERTY keys are mapped Cosmac keys
-		Map<Integer, Integer> mapping = game.getKeyMapping(); 
+		Map<Integer, Integer> mapping = getKeyMapping(game.getKeyMappingSpec()); 
 		
-		// The emulator executes CHIP8 instructions one by one in backgroudn thread, create it here
-		Thread emuThread = new Thread(() -> {
-			while (true) {
-				try {
-					emulator.executeOneInstruction();
-					Thread.currentThread().sleep(1); // This seems to produce a usable speed
-				} catch (InterruptedException e) {
-				}
-			}
-		});
+		// The emulator executes CHIP8 instructions in frames at 60 Hz in background thread, create it here
+		Thread emuThread = new Thread(new Chip8Scheduler(emulator));
 
 		// The emulator provides the pixels as int[], we need a panel and a BufferedImage to display them
+		// The previous frame is kept to tell the keypad when the display reacted to a key
 		BufferedImage bufferedImage = new BufferedImage(128, 64, BufferedImage.TYPE_INT_ARGB);
+		int[] presented = new int[128 * 64];
 		JPanel panel = new JPanel() {
 			@Override
 			public void paint(Graphics g) {
 				super.paint(g);
-				bufferedImage.setRGB(0, 0, 128, 64, emulator.getPixels(), 0, 128);
+				Chip8Stats stats = emulator.getStats();
+				Chip8RenderEvent event = Chip8Scheduler.JFR ? new Chip8RenderEvent() : null;
+				long start = System.nanoTime();
+				if (event != null)
+					event.begin();
+				int[] pixels = emulator.getPixels();
+				bufferedImage.setRGB(0, 0, 128, 64, pixels, 0, 128);
 				g.drawImage(bufferedImage, 0, 0, getWidth(), getHeight(), null);
+				if (event != null)
+					event.commit();
+				if (stats != null)
+					stats.recordRender(start, System.nanoTime());
+				boolean changed = !Arrays.equals(pixels, presented);
+				if (changed)
+					System.arraycopy(pixels, 0, presented, 0, presented.length);
+				keypad.framePresented(changed);
 			}
 		};
 
@@ -109,7 +118,7 @@ public class ChipEmuMain {
 			public void setPressed(KeyEvent e, boolean pressed) {
 				int keyCode = e.getKeyCode();
 				if (mapping.containsKey(keyCode))
-					keyPressed[mapping.get(keyCode)] = pressed;
+					keypad.setPressed(mapping.get(keyCode), pressed);
 			}
 
 			@Override
@@ -141,12 +150,83 @@ public class ChipEmuMain {
 		panel.setFocusable(true);
 		panel.requestFocusInWindow();
 		
+		// Run with -Dchip8.latency=true to get the key to frame latency histogram on exit
+		if (Boolean.getBoolean("chip8.latency"))
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> keypad.getLatencyHistogram().print(System.out)));
+
+		// Run with -Dchip8.trace=N to get the last N instructions dumped on an illegal opcode, see Chip8TraceDecoder
+		if (Integer.getInteger("chip8.trace", 0) > 0)
+			emulator.enableTrace(Integer.getInteger("chip8.trace"));
+
+		// Run with -Dchip8.stats=true to get the frame time, jitter, throughput and render time histograms on exit
+		if (Boolean.getBoolean("chip8.stats")) {
+			Chip8Stats stats = emulator.enableStats();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> stats.print(System.out)));
+		}
+
 		// That is need now is to start the emulator and the timer
 		emuThread.start();
 		timer.start();
 
 	}
 
+	// The default key mapping from QWERTY to CHIP8/Cosmac is as follows
+	//
+	//   QWERTY           Cosmac
+	//
+	//   1 2 3 4	      1 2 3 C
+	//   Q W E R    =>    4 5 6 D
+	//   A S D F          7 8 9 E
+	//   Z X C V          A 0 B F
+	//
+	// If the spec string from Games.Game.getKeyMappingSpec() is not empty then
+	// it is a list of comma separated VK_xx names for constants int the KeyEvent class.
+	// For example see how Invaders maps the arrow keys to Cosmac keys 4 5 6 
+	// which are the only keys that that game uses
+
+	static public Map<Integer, Integer> getKeyMapping(String spec) { // keycode -> chip8 key
+		Map<Integer, Integer> map = new Hashtable<Integer, Integer>();
+		if (spec.length() == 0) { // default mapping
+			map.put(KeyEvent.VK_1, 0x1);
+			map.put(KeyEvent.VK_2, 0x2);
+			map.put(KeyEvent.VK_3, 0x3);
+			map.put(KeyEvent.VK_4, 0xC);
+
+			map.put(KeyEvent.VK_Q, 0x4);
+			map.put(KeyEvent.VK_W, 0x5);
+			map.put(KeyEvent.VK_E, 0x6);
+			map.put(KeyEvent.VK_R, 0xD);
+
+			map.put(KeyEvent.VK_A, 0x7);
+			map.put(KeyEvent.VK_S, 0x8);
+			map.put(KeyEvent.VK_D, 0x9);
+			map.put(KeyEvent.VK_F, 0xE);
+
+			map.put(KeyEvent.VK_Z, 0xA);
+			map.put(KeyEvent.VK_X, 0x0);
+			map.put(KeyEvent.VK_C, 0xB);
+			map.put(KeyEvent.VK_V, 0xF);
+		} else {
+			String[] keycodes = spec.split(",");
+			for (int i = 0; i < keycodes.length; i++)
+				keycodes[i] = keycodes[i].trim();
+
+			for (int key = 0; key < keycodes.length; key++) {
+				String codename = keycodes[key];
+				if (codename.length() == 0)
+					continue;
+				try {
+					int keycode = KeyEvent.class.getField(codename).getInt(null);
+					map.put(keycode, key);
+				} catch (Exception e) {
+					System.out.println("Exception when trying to map " + codename + " to chip8 key " + key);
+					e.printStackTrace();
+				}
+			}
+		}
+		return map;
+	}
+
 	public static void main(String[] args) {
 		// The UI needs to be created in the EDT so we instantiate the whole thing there with this
 		SwingUtilities.invokeLater(() -> {
@@ -1,6 +1,5 @@
 package chip8.games;
 
-import java.awt.event.KeyEvent;
 /*
 This
 file is part of JavaCHIP8.
@@ -19,9 +18,7 @@ gives the hexvalue for key '1' and so on. Use '.' for non mapped keys.
 
 */
 import java.io.*;
-import java.util.Hashtable;
 import java.util.LinkedHashMap;
-import java.util.Map;
 
 public class Games {
 
@@ -45,67 +42,14 @@ public class Games {
 
 		// Key mapping is specified as the second string of the pair of string
 		// for each Game in the m_Games table. If the string is empty then
-		// the default mapping is returned.
-		//
-		// The default key mapping from QWERTY to CHIP8/Cosmac is as follows
-		//
-		//   QWERTY           Cosmac
-		//
-		//   1 2 3 4	      1 2 3 C
-		//   Q W E R    =>    4 5 6 D
-		//   A S D F          7 8 9 E
-		//   Z X C V          A 0 B F
-		//
-		// If the string is not empty then the code assumes it is a list
-		// of comma separated VK_xx names for constants int the KeyEvent class.
-		// For example see how Invaders maps the arrow keys to Cosmac keys 4 5 6 
-		// which are the only keys that that game uses
-
-		public Map<Integer, Integer> getKeyMapping() {
-			return getKeyMapping(m_KeyMapping);
-		}
-
-		static public Map<Integer, Integer> getKeyMapping(String spec) { // keycode -> chip8 key
-			Map<Integer, Integer> map = new Hashtable<Integer, Integer>();
-			if (spec.length() == 0) { // default mapping
-				map.put(KeyEvent.VK_1, 0x1);
-				map.put(KeyEvent.VK_2, 0x2);
-				map.put(KeyEvent.VK_3, 0x3);
-				map.put(KeyEvent.VK_4, 0xC);
-
-				map.put(KeyEvent.VK_Q, 0x4);
-				map.put(KeyEvent.VK_W, 0x5);
-				map.put(KeyEvent.VK_E, 0x6);
-				map.put(KeyEvent.VK_R, 0xD);
-
-				map.put(KeyEvent.VK_A, 0x7);
-				map.put(KeyEvent.VK_S, 0x8);
-				map.put(KeyEvent.VK_D, 0x9);
-				map.put(KeyEvent.VK_F, 0xE);
-
-				map.put(KeyEvent.VK_Z, 0xA);
-				map.put(KeyEvent.VK_X, 0x0);
-				map.put(KeyEvent.VK_C, 0xB);
-				map.put(KeyEvent.VK_V, 0xF);
-			} else {
-				String[] keycodes = spec.split(",");
-				for (int i = 0; i < keycodes.length; i++)
-					keycodes[i] = keycodes[i].trim();
-
-				for (int key = 0; key < keycodes.length; key++) {
-					String codename = keycodes[key];
-					if (codename.length() == 0)
-						continue;
-					try {
-						int keycode = KeyEvent.class.getField(codename).getInt(null);
-						map.put(keycode, key);
-					} catch (Exception e) {
-						System.out.println("Exception when trying to map " + codename + " to chip8 key " + key);
-						e.printStackTrace();
-					}
-				}
-			}
-			return map;
+		// the front end should use its default mapping. Otherwise the string
+		// is a list of comma separated key names, the position in the list
+		// gives the CHIP8/Cosmac key. The names are not interpreted here so
+		// that this class (and the emulator core) does not depend on AWT,
+		// see ChipEmuMain.getKeyMapping for the QWERTY/KeyEvent mapping.
+
+		public String getKeyMappingSpec() {
+			return m_KeyMapping;
 		}
 
 	}